@@ -17,7 +17,8 @@ public class RouteConfiguration {
     
     @Bean
     public RouterFunction<ServerResponse> libraryRoutes(LibraryHandler handler) {
-        return route(POST("/books").and(accept(MediaType.APPLICATION_JSON)), handler::searchBooks);
+        return route(POST("/books").and(accept(MediaType.APPLICATION_JSON)), handler::searchBooks)
+                .andRoute(POST("/books/page").and(accept(MediaType.APPLICATION_JSON)), handler::searchBooksPage);
 	}
 
 }
@@ -1,11 +1,14 @@
 package com.everymundo.demo.handler;
 
+import static org.springframework.web.reactive.function.server.ServerResponse.badRequest;
 import static org.springframework.web.reactive.function.server.ServerResponse.ok;
 
 import com.everymundo.demo.model.BookData;
+import com.everymundo.demo.model.BookPageData;
 import com.everymundo.demo.model.filter.LibraryFilter;
 import com.everymundo.demo.service.LibraryService;
 
+import org.apache.commons.lang3.math.NumberUtils;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
@@ -17,6 +20,9 @@ import reactor.core.publisher.Mono;
 @RequiredArgsConstructor
 public class LibraryHandler {
 
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final LibraryService libraryService;
 
 
@@ -25,4 +31,20 @@ public class LibraryHandler {
                 .flatMap(filter -> ok().body(this.libraryService.searchBooks(filter), BookData.class));
     }
 
+    public Mono<ServerResponse> searchBooksPage(ServerRequest request) {
+        // Invalid numbers map to -1 so they fail the range checks below
+        int page = request.queryParam("page").map(value -> NumberUtils.toInt(value, -1)).orElse(0);
+        int size = request.queryParam("size").map(value -> NumberUtils.toInt(value, -1)).orElse(DEFAULT_PAGE_SIZE);
+
+        if (page < 0) {
+            return badRequest().bodyValue("page must be a number greater than or equal to 0");
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return badRequest().bodyValue("size must be a number between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        return request.bodyToMono(LibraryFilter.class)
+                .flatMap(filter -> ok().body(this.libraryService.searchBooksPage(filter, page, size), BookPageData.class));
+    }
+
 }
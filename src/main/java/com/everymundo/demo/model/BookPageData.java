@@ -0,0 +1,13 @@
+package com.everymundo.demo.model;
+
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class BookPageData {
+
+    private List<BookData> books;
+    private long total;
+
+}
@@ -0,0 +1,30 @@
+package com.everymundo.demo.model.filter;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Coarse shape of a {@link LibraryFilter}, used to pick the execution options of its aggregation.
+ */
+public enum FilterShape {
+
+    UNFILTERED,
+    YEAR,
+    NAME,
+    NAME_YEAR,
+    AUTHOR,
+    AUTHOR_YEAR;
+
+
+    public static FilterShape of(LibraryFilter filter) {
+        boolean year = filter.hasBookFilters() && filter.getBook().getYear() != null;
+
+        if (filter.hasAuthorFilter()) {
+            return year ? AUTHOR_YEAR : AUTHOR;
+        }
+        if (filter.hasBookFilters() && StringUtils.isNotBlank(filter.getBook().getName())) {
+            return year ? NAME_YEAR : NAME;
+        }
+        return year ? YEAR : UNFILTERED;
+    }
+
+}
@@ -4,8 +4,10 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
 import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.CountOperation;
 
 public class ExtendedAggregation {
 	
@@ -48,4 +50,24 @@ public class ExtendedAggregation {
 		return new MatchExprOperation(expr);
 	}
 
+	/**
+	 * Creates a new {@link FacetPipelineOperation} running each named pipeline over the same input documents.
+	 *
+	 * @param facets must not be empty, keyed by the output field of each facet.
+	 * @return new instance of {@link FacetPipelineOperation}.
+	 */
+	public static FacetPipelineOperation facet(Map<String, List<AggregationOperation>> facets) {
+		return new FacetPipelineOperation(facets);
+	}
+
+	/**
+	 * Creates a new {@link CountOperation} writing the number of input documents to the given field.
+	 *
+	 * @param as must not be {@literal null} or empty.
+	 * @return new instance of {@link CountOperation}.
+	 */
+	public static CountOperation count(String as) {
+		return Aggregation.count().as(as);
+	}
+
 }
@@ -0,0 +1,64 @@
+package com.everymundo.demo.mongodb.aggregation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperationContext;
+import org.springframework.data.mongodb.core.aggregation.ExposedFields;
+import org.springframework.data.mongodb.core.aggregation.Fields;
+import org.springframework.data.mongodb.core.aggregation.FieldsExposingAggregationOperation;
+import org.springframework.util.Assert;
+
+public class FacetPipelineOperation implements FieldsExposingAggregationOperation {
+
+	private final Map<String, List<AggregationOperation>> facets;
+
+
+	/**
+	 * Creates a new {@link FacetPipelineOperation} for the given facets.
+	 *
+	 * @param facets must not be empty, and each facet pipeline must not be empty.
+	 */
+	public FacetPipelineOperation(Map<String, List<AggregationOperation>> facets) {
+		Assert.notEmpty(facets, "Facets must not be empty!");
+		facets.forEach((name, pipeline) -> Assert.notEmpty(pipeline, "Facet pipeline must not be empty!"));
+
+		this.facets = facets;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.data.mongodb.core.aggregation.FieldsExposingAggregationOperation#getFields()
+	 */
+	@Override
+	public ExposedFields getFields() {
+		return ExposedFields.synthetic(Fields.fields(facets.keySet().toArray(new String[0])));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.data.mongodb.core.aggregation.AggregationOperation#toDocument(org.springframework.data.mongodb.core.aggregation.AggregationOperationContext)
+	 */
+	@Override
+	public Document toDocument(AggregationOperationContext context) {
+		Document facetObject = new Document();
+
+		facets.entrySet().stream().forEach(entry -> facetObject.append(entry.getKey(),
+				entry.getValue().stream().flatMap(stage -> stage.toPipelineStages(context).stream()).collect(Collectors.toList())));
+
+		return new Document(getOperator(), facetObject);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.springframework.data.mongodb.core.aggregation.AggregationOperation#getOperator()
+	 */
+	@Override
+	public String getOperator() {
+		return "$facet";
+	}
+
+}
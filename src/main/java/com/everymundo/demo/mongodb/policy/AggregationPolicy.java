@@ -0,0 +1,25 @@
+package com.everymundo.demo.mongodb.policy;
+
+import java.time.Duration;
+
+import javax.validation.constraints.Positive;
+
+import lombok.Data;
+
+/**
+ * Execution options of an aggregation. Unset values fall back to the default policy.
+ */
+@Data
+public class AggregationPolicy {
+
+    private Duration maxTime;
+    private Boolean allowDiskUse;
+    private String hint;
+    @Positive
+    private Integer minBatchSize;
+    @Positive
+    private Integer maxBatchSize;
+    @Positive
+    private Integer targetBatchBytes;
+
+}
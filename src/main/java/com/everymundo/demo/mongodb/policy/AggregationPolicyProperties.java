@@ -0,0 +1,56 @@
+package com.everymundo.demo.mongodb.policy;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.validation.Valid;
+import javax.validation.constraints.AssertTrue;
+
+import com.everymundo.demo.model.filter.FilterShape;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import lombok.Data;
+
+/**
+ * Aggregation policies per {@link FilterShape}. The defaults below are the single source of the
+ * fallback values; configuration only needs to override what differs.
+ */
+@Data
+@Validated
+@ConfigurationProperties(prefix = "library.aggregation")
+public class AggregationPolicyProperties {
+
+    @Valid
+    private AggregationPolicy defaults = defaultPolicy();
+    private Map<FilterShape, @Valid AggregationPolicy> shapes = new EnumMap<>(FilterShape.class);
+
+
+    @AssertTrue(message = "Batch sizes must be set by default and min-batch-size must not exceed max-batch-size for any shape")
+    public boolean isBatchSizeRangeValid() {
+        if (defaults.getMinBatchSize() == null || defaults.getMaxBatchSize() == null || defaults.getTargetBatchBytes() == null) {
+            return false;
+        }
+
+        return Arrays.stream(FilterShape.values())
+                .map(shape -> shapes.getOrDefault(shape, defaults))
+                .allMatch(policy -> Optional.ofNullable(policy.getMinBatchSize()).orElse(defaults.getMinBatchSize())
+                        <= Optional.ofNullable(policy.getMaxBatchSize()).orElse(defaults.getMaxBatchSize()));
+    }
+
+
+    private static AggregationPolicy defaultPolicy() {
+        AggregationPolicy policy = new AggregationPolicy();
+        policy.setMaxTime(Duration.ofSeconds(5));
+        policy.setAllowDiskUse(false);
+        policy.setMinBatchSize(16);
+        policy.setMaxBatchSize(1000);
+        policy.setTargetBatchBytes(1024 * 1024);
+        return policy;
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.everymundo.demo.mongodb.policy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import com.everymundo.demo.model.filter.FilterShape;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.stereotype.Component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resolves the {@link AggregationOptions} of each {@link FilterShape} and adapts its cursor batch size
+ * to the document sizes observed for that shape.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@EnableConfigurationProperties(AggregationPolicyProperties.class)
+public class AggregationPolicyResolver {
+
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+    private static final int SAMPLE_RATE = 16;
+    private static final double SMOOTHING = 0.2;
+
+    private static final String HINTED_COLLECTION = "books";
+
+    private final AggregationPolicyProperties properties;
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    private final Map<String, Document> indexKeys = new ConcurrentHashMap<>();
+
+    private final Map<FilterShape, Double> averageDocumentBytes = new ConcurrentHashMap<>();
+    private final Map<FilterShape, AtomicLong> observedDocuments = new ConcurrentHashMap<>();
+
+
+    public AggregationOptions optionsFor(FilterShape shape) {
+        AggregationOptions.Builder builder = AggregationOptions.builder()
+                .cursorBatchSize(batchSizeFor(shape));
+
+        Optional.ofNullable(resolve(shape, AggregationPolicy::getMaxTime)).ifPresent(builder::maxTime);
+        Optional.ofNullable(resolve(shape, AggregationPolicy::getAllowDiskUse)).ifPresent(builder::allowDiskUse);
+        Optional.ofNullable(resolve(shape, AggregationPolicy::getHint)).map(indexKeys::get).ifPresent(builder::hint);
+
+        return builder.build();
+    }
+
+    /**
+     * Loads the indexes of the hinted collection once the application is ready. Hints only apply to
+     * fields with an existing single field index, since hinting a missing index fails the aggregation.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndexes() {
+        mongoTemplate.indexOps(HINTED_COLLECTION).getIndexInfo()
+                .collectList()
+                .subscribe(this::registerIndexes, error -> log.warn("Could not load indexes of {}, hints are disabled", HINTED_COLLECTION, error));
+    }
+
+    public void registerIndexes(List<IndexInfo> indexes) {
+        indexes.stream()
+                .filter(index -> index.getIndexFields().size() == 1 && index.getIndexFields().get(0).getDirection() != null)
+                .map(index -> index.getIndexFields().get(0))
+                .forEach(field -> indexKeys.put(field.getKey(), new Document(field.getKey(), field.getDirection() == Direction.ASC ? 1 : -1)));
+
+        Stream.concat(Stream.of(properties.getDefaults()), properties.getShapes().values().stream())
+                .map(AggregationPolicy::getHint)
+                .filter(hint -> hint != null && !indexKeys.containsKey(hint))
+                .distinct()
+                .forEach(hint -> log.warn("No single field index on {}.{}, hint is skipped", HINTED_COLLECTION, hint));
+    }
+
+    /**
+     * Number of documents per cursor batch, sized so a batch stays close to the target bytes.
+     * Uses the minimum batch size until a document of the given shape has been observed.
+     */
+    public int batchSizeFor(FilterShape shape) {
+        int min = resolve(shape, AggregationPolicy::getMinBatchSize);
+        int max = resolve(shape, AggregationPolicy::getMaxBatchSize);
+        Double average = averageDocumentBytes.get(shape);
+
+        if (average == null) {
+            return min;
+        }
+
+        long size = Math.round(resolve(shape, AggregationPolicy::getTargetBatchBytes) / Math.max(average, 1d));
+        return (int) Math.max(min, Math.min(max, size));
+    }
+
+    /**
+     * Records the size of a result document of the given shape. Only one in {@value #SAMPLE_RATE} documents
+     * of each shape is encoded, to keep the cost off the hot path.
+     */
+    public void observe(FilterShape shape, Document document) {
+        if (observedDocuments.computeIfAbsent(shape, key -> new AtomicLong()).getAndIncrement() % SAMPLE_RATE != 0) {
+            return;
+        }
+
+        double bytes = new RawBsonDocument(document, DOCUMENT_CODEC).getByteBuffer().remaining();
+        averageDocumentBytes.merge(shape, bytes, (average, sample) -> average + SMOOTHING * (sample - average));
+    }
+
+    private <T> T resolve(FilterShape shape, Function<AggregationPolicy, T> option) {
+        return Optional.ofNullable(properties.getShapes().get(shape))
+                .map(option)
+                .orElseGet(() -> option.apply(properties.getDefaults()));
+    }
+
+}
@@ -1,21 +1,30 @@
 package com.everymundo.demo.service;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.everymundo.demo.model.BookData;
+import com.everymundo.demo.model.BookPageData;
+import com.everymundo.demo.model.filter.FilterShape;
 import com.everymundo.demo.model.filter.LibraryFilter;
 import com.everymundo.demo.mongodb.aggregation.ExtendedAggregation;
 import com.everymundo.demo.mongodb.aggregation.RegexOperators;
+import com.everymundo.demo.mongodb.policy.AggregationPolicyResolver;
 
 import org.apache.commons.lang3.StringUtils;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
 import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
 import org.springframework.data.mongodb.core.aggregation.BooleanOperators;
 import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
 import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
@@ -29,65 +38,147 @@ import reactor.core.publisher.Mono;
 public class LibraryService {
 
     private final ReactiveMongoTemplate mongoTemplate;
+    private final AggregationPolicyResolver policyResolver;
 
 
     public Flux<BookData> searchBooks(LibraryFilter filter) {
         return Flux.defer(() -> {
                 List<AggregationOperation> stages = new ArrayList<>();
 
+                // Match for Book Filters
                 if (filter.hasBookFilters()) {
-                    Criteria bookCriteria = new Criteria();
-
-                    // Book Name
-                    if (StringUtils.isNotBlank(filter.getBook().getName())) {
-                        bookCriteria.and("name").regex(".*" + filter.getBook().getName() + ".*", "i");
-                    }
-                    // Book Year
-                    if (filter.getBook().getYear() != null) {
-                        bookCriteria.and("year").is(filter.getBook().getYear());
-                    }
-
-                    // Match for Book Filters
-                    stages.add(Aggregation.match(bookCriteria));
+                    stages.add(bookMatch(filter));
                 }
 
-                List<AggregationOperation> authorPipeline = new ArrayList<>();
-                
-                if (filter.hasAuthorFilter()) {
-                    List<AggregationExpression> authorMatches = new ArrayList<>();
-                    
-                    // Compare book.authorId with author.id
-                    authorMatches.add(ComparisonOperators.valueOf("$_id").equalTo(ConvertOperators.valueOf("$$authorId").convertToObjectId()));
-
-                    // Author First Name
-                    if (StringUtils.isNotBlank(filter.getAuthor().getFirstName())) {
-                        authorMatches.add(RegexOperators.valueOf("$firstName").match(".*" + filter.getAuthor().getFirstName() + ".*", "i"));
-                    }
-                    // Author Middle Name
-                    if (StringUtils.isNotBlank(filter.getAuthor().getMiddleName())) {
-                        authorMatches.add(RegexOperators.valueOf("$middleName").match(".*" + filter.getAuthor().getMiddleName() + ".*", "i"));
-                    }
-                    // Author Last Name
-                    if (StringUtils.isNotBlank(filter.getAuthor().getLastName())) {
-                        authorMatches.add(RegexOperators.valueOf("$lastName").match(".*" + filter.getAuthor().getLastName() + ".*", "i"));
-                    }
-
-                    // Match to join and filter author
-                    authorPipeline.add(ExtendedAggregation.matchExpr(BooleanOperators.And.and(authorMatches.toArray())));
-                } else {
-                    // Match to join author
-                    authorPipeline.add(ExtendedAggregation.matchExpr(ComparisonOperators.valueOf("$_id").equalTo(ConvertOperators.valueOf("$$authorId").convertToObjectId())));
-                }
-
-                // Lookup to join author
-                stages.add(ExtendedAggregation.lookup("authors", Map.of("authorId", "$authorId"), "author", authorPipeline));
-
-                // Unwind author
-                stages.add(Aggregation.unwind("$author", false));
+                // Lookup and unwind to join author
+                stages.addAll(authorLookup(filter, false));
 
                 return Mono.just(stages);
             })
-            .flatMap(stages -> this.mongoTemplate.aggregate(Aggregation.newAggregation(stages), "books", BookData.class));
+            .flatMap(stages -> {
+                FilterShape shape = FilterShape.of(filter);
+                AggregationOptions options = this.policyResolver.optionsFor(shape);
+
+                // Request from the cursor one batch at a time, and sample document sizes to adapt the next batch size
+                return this.mongoTemplate.aggregate(Aggregation.newAggregation(stages).withOptions(options), "books", Document.class)
+                        .doOnNext(document -> this.policyResolver.observe(shape, document))
+                        .map(document -> this.mongoTemplate.getConverter().read(BookData.class, document))
+                        .limitRate(options.getCursorBatchSize());
+            });
+    }
+
+    /**
+     * Searches one page of books along with the total number of matches, in a single aggregation.
+     * <p>
+     * Without author filters the total is counted without joining authors, so books whose author
+     * does not exist are counted and returned with a {@literal null} author. {@link #searchBooks(LibraryFilter)}
+     * leaves those books out.
+     */
+    public Mono<BookPageData> searchBooksPage(LibraryFilter filter, int page, int size) {
+        return Mono.defer(() -> Mono.just(pageStages(filter, page, size)))
+            .flatMap(stages -> {
+                AggregationOptions options = this.policyResolver.optionsFor(FilterShape.of(filter));
+
+                return this.mongoTemplate.aggregate(Aggregation.newAggregation(stages).withOptions(options), "books", BookPageData.class).next();
+            });
+    }
+
+    List<AggregationOperation> pageStages(LibraryFilter filter, int page, int size) {
+        List<AggregationOperation> stages = new ArrayList<>();
+
+        // Match for Book Filters
+        if (filter.hasBookFilters()) {
+            stages.add(bookMatch(filter));
+        }
+
+        // Sort so skip and limit return stable pages
+        stages.add(Aggregation.sort(Sort.by("_id")));
+
+        List<AggregationOperation> booksPipeline = new ArrayList<>();
+        List<AggregationOperation> totalPipeline = new ArrayList<>();
+
+        // Author filters narrow the result, so both facets need the joined author
+        if (filter.hasAuthorFilter()) {
+            stages.addAll(authorLookup(filter, false));
+        }
+
+        // Page of books
+        booksPipeline.add(Aggregation.skip((long) page * size));
+        booksPipeline.add(Aggregation.limit(size));
+
+        // Without author filters only the page itself needs the joined author, keeping books
+        // with a missing author so the page agrees with the total
+        if (!filter.hasAuthorFilter()) {
+            booksPipeline.addAll(authorLookup(filter, true));
+        }
+
+        // Total count of books
+        totalPipeline.add(ExtendedAggregation.count("total"));
+
+        Map<String, List<AggregationOperation>> facets = new LinkedHashMap<>();
+        facets.put("books", booksPipeline);
+        facets.put("total", totalPipeline);
+
+        // Facet to get the page and the total count in one round trip
+        stages.add(ExtendedAggregation.facet(facets));
+
+        // Project the count, which is an empty array when nothing matches
+        stages.add(Aggregation.project("books")
+                .and(ConditionalOperators.ifNull(ArrayOperators.ArrayElemAt.arrayOf("total.total").elementAt(0)).then(0)).as("total"));
+
+        return stages;
+    }
+
+    private AggregationOperation bookMatch(LibraryFilter filter) {
+        Criteria bookCriteria = new Criteria();
+
+        // Book Name
+        if (StringUtils.isNotBlank(filter.getBook().getName())) {
+            bookCriteria.and("name").regex(".*" + filter.getBook().getName() + ".*", "i");
+        }
+        // Book Year
+        if (filter.getBook().getYear() != null) {
+            bookCriteria.and("year").is(filter.getBook().getYear());
+        }
+
+        return Aggregation.match(bookCriteria);
+    }
+
+    private List<AggregationOperation> authorLookup(LibraryFilter filter, boolean preserveMissingAuthor) {
+        List<AggregationOperation> authorPipeline = new ArrayList<>();
+        
+        if (filter.hasAuthorFilter()) {
+            List<AggregationExpression> authorMatches = new ArrayList<>();
+            
+            // Compare book.authorId with author.id
+            authorMatches.add(ComparisonOperators.valueOf("$_id").equalTo(ConvertOperators.valueOf("$$authorId").convertToObjectId()));
+
+            // Author First Name
+            if (StringUtils.isNotBlank(filter.getAuthor().getFirstName())) {
+                authorMatches.add(RegexOperators.valueOf("$firstName").match(".*" + filter.getAuthor().getFirstName() + ".*", "i"));
+            }
+            // Author Middle Name
+            if (StringUtils.isNotBlank(filter.getAuthor().getMiddleName())) {
+                authorMatches.add(RegexOperators.valueOf("$middleName").match(".*" + filter.getAuthor().getMiddleName() + ".*", "i"));
+            }
+            // Author Last Name
+            if (StringUtils.isNotBlank(filter.getAuthor().getLastName())) {
+                authorMatches.add(RegexOperators.valueOf("$lastName").match(".*" + filter.getAuthor().getLastName() + ".*", "i"));
+            }
+
+            // Match to join and filter author
+            authorPipeline.add(ExtendedAggregation.matchExpr(BooleanOperators.And.and(authorMatches.toArray())));
+        } else {
+            // Match to join author
+            authorPipeline.add(ExtendedAggregation.matchExpr(ComparisonOperators.valueOf("$_id").equalTo(ConvertOperators.valueOf("$$authorId").convertToObjectId())));
+        }
+
+        return List.of(
+            // Lookup to join author
+            ExtendedAggregation.lookup("authors", Map.of("authorId", "$authorId"), "author", authorPipeline),
+            // Unwind author
+            Aggregation.unwind("$author", preserveMissingAuthor)
+        );
     }
     
 }
@@ -0,0 +1,52 @@
+package com.everymundo.demo.model.filter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class FilterShapeTests {
+
+    @Test
+    void unfilteredWithoutBookOrAuthorFilter() {
+        assertEquals(FilterShape.UNFILTERED, FilterShape.of(new LibraryFilter()));
+    }
+
+    @Test
+    void blankNameIsNotANameFilter() {
+        assertEquals(FilterShape.UNFILTERED, FilterShape.of(filter("  ", null, null)));
+        assertEquals(FilterShape.YEAR, FilterShape.of(filter("  ", 1990, null)));
+    }
+
+    @Test
+    void classifiesBookFilters() {
+        assertEquals(FilterShape.YEAR, FilterShape.of(filter(null, 1990, null)));
+        assertEquals(FilterShape.NAME, FilterShape.of(filter("Hobbit", null, null)));
+        assertEquals(FilterShape.NAME_YEAR, FilterShape.of(filter("Hobbit", 1990, null)));
+    }
+
+    @Test
+    void authorFilterTakesPrecedenceOverName() {
+        assertEquals(FilterShape.AUTHOR, FilterShape.of(filter("Hobbit", null, "Tolkien")));
+        assertEquals(FilterShape.AUTHOR_YEAR, FilterShape.of(filter("Hobbit", 1990, "Tolkien")));
+    }
+
+    @Test
+    void authorFilterWithoutBookFilter() {
+        LibraryFilter filter = new LibraryFilter();
+        filter.setAuthor(new AuthorFilter());
+        filter.getAuthor().setLastName("Tolkien");
+
+        assertEquals(FilterShape.AUTHOR, FilterShape.of(filter));
+    }
+
+    private static LibraryFilter filter(String name, Integer year, String lastName) {
+        LibraryFilter filter = new LibraryFilter();
+        filter.setBook(new BookFilter());
+        filter.getBook().setName(name);
+        filter.getBook().setYear(year);
+        filter.setAuthor(new AuthorFilter());
+        filter.getAuthor().setLastName(lastName);
+        return filter;
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.everymundo.demo.mongodb.aggregation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperationContext;
+
+class FacetPipelineOperationTests {
+
+	@Test
+	void rendersEachFacetPipeline() {
+		Map<String, List<AggregationOperation>> facets = new LinkedHashMap<>();
+		facets.put("books", List.of(Aggregation.skip(10L), Aggregation.limit(5)));
+		facets.put("total", List.of(ExtendedAggregation.count("total")));
+
+		Document facet = ExtendedAggregation.facet(facets).toDocument(Aggregation.DEFAULT_CONTEXT).get("$facet", Document.class);
+
+		assertEquals(List.of(new Document("$skip", 10L), new Document("$limit", 5L)), facet.get("books"));
+		assertEquals(List.of(new Document("$count", "total")), facet.get("total"));
+	}
+
+	@Test
+	void flattensStagesExpandingToSeveralPipelineStages() {
+		AggregationOperation multiStage = new AggregationOperation() {
+
+			@Override
+			public Document toDocument(AggregationOperationContext context) {
+				return new Document("$skip", 1);
+			}
+
+			@Override
+			public List<Document> toPipelineStages(AggregationOperationContext context) {
+				return List.of(new Document("$skip", 1), new Document("$limit", 2));
+			}
+
+		};
+
+		Document facet = ExtendedAggregation.facet(Map.of("books", List.of(multiStage))).toDocument(Aggregation.DEFAULT_CONTEXT).get("$facet", Document.class);
+
+		assertEquals(List.of(new Document("$skip", 1), new Document("$limit", 2)), facet.get("books"));
+	}
+
+	@Test
+	void rejectsEmptyFacets() {
+		assertThrows(IllegalArgumentException.class, () -> ExtendedAggregation.facet(Map.of()));
+	}
+
+	@Test
+	void rejectsEmptyFacetPipeline() {
+		assertThrows(IllegalArgumentException.class, () -> ExtendedAggregation.facet(Map.of("books", List.of())));
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.everymundo.demo.mongodb.policy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import com.everymundo.demo.model.filter.FilterShape;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+
+class AggregationPolicyResolverTests {
+
+    private static final IndexInfo YEAR_INDEX = new IndexInfo(List.of(IndexField.create("year", Direction.ASC)), "year", false, false, null);
+
+
+    @Test
+    void shapePolicyFallsBackToDefaults() {
+        AggregationPolicyProperties properties = new AggregationPolicyProperties();
+        AggregationPolicy year = new AggregationPolicy();
+        year.setMaxTime(Duration.ofSeconds(2));
+        properties.getShapes().put(FilterShape.YEAR, year);
+
+        AggregationPolicyResolver resolver = new AggregationPolicyResolver(properties, null);
+
+        AggregationOptions yearOptions = resolver.optionsFor(FilterShape.YEAR);
+        assertEquals(Duration.ofSeconds(2), yearOptions.getMaxTime());
+        assertFalse(yearOptions.isAllowDiskUse());
+        assertEquals(properties.getDefaults().getMinBatchSize(), yearOptions.getCursorBatchSize());
+
+        assertEquals(properties.getDefaults().getMaxTime(), resolver.optionsFor(FilterShape.NAME).getMaxTime());
+    }
+
+    @Test
+    void optionsHintExistingIndex() {
+        AggregationPolicyProperties properties = new AggregationPolicyProperties();
+        AggregationPolicy year = new AggregationPolicy();
+        year.setHint("year");
+        year.setAllowDiskUse(true);
+        properties.getShapes().put(FilterShape.YEAR, year);
+
+        AggregationPolicyResolver resolver = new AggregationPolicyResolver(properties, null);
+        resolver.registerIndexes(List.of(YEAR_INDEX));
+
+        AggregationOptions options = resolver.optionsFor(FilterShape.YEAR);
+        assertEquals(new Document("year", 1), options.getHint().orElseThrow());
+        assertTrue(options.isAllowDiskUse());
+        assertFalse(resolver.optionsFor(FilterShape.NAME).getHint().isPresent());
+    }
+
+    @Test
+    void optionsSkipHintOfMissingIndex() {
+        AggregationPolicyProperties properties = new AggregationPolicyProperties();
+        AggregationPolicy name = new AggregationPolicy();
+        name.setHint("name");
+        properties.getShapes().put(FilterShape.NAME, name);
+
+        AggregationPolicyResolver resolver = new AggregationPolicyResolver(properties, null);
+        resolver.registerIndexes(List.of(YEAR_INDEX));
+
+        assertFalse(resolver.optionsFor(FilterShape.NAME).getHint().isPresent());
+    }
+
+    @Test
+    void batchSizeStartsAtMinimum() {
+        AggregationPolicyProperties properties = new AggregationPolicyProperties();
+        AggregationPolicyResolver resolver = new AggregationPolicyResolver(properties, null);
+
+        assertEquals((int) properties.getDefaults().getMinBatchSize(), resolver.batchSizeFor(FilterShape.NAME));
+    }
+
+    @Test
+    void batchSizeAdaptsWithinBounds() {
+        AggregationPolicyProperties properties = new AggregationPolicyProperties();
+        properties.getDefaults().setMinBatchSize(10);
+        properties.getDefaults().setMaxBatchSize(100);
+        properties.getDefaults().setTargetBatchBytes(100_000);
+
+        AggregationPolicyResolver resolver = new AggregationPolicyResolver(properties, null);
+
+        // ~2 KB documents fit about 50 per batch
+        resolver.observe(FilterShape.NAME, new Document("name", "x".repeat(2000)));
+        int batchSize = resolver.batchSizeFor(FilterShape.NAME);
+        assertTrue(batchSize > 10 && batchSize < 100, "batch size " + batchSize);
+
+        // Tiny documents are capped at the maximum
+        resolver.observe(FilterShape.YEAR, new Document("year", 1990));
+        assertEquals(100, resolver.batchSizeFor(FilterShape.YEAR));
+
+        // Huge documents are raised to the minimum
+        resolver.observe(FilterShape.AUTHOR, new Document("name", "x".repeat(1_000_000)));
+        assertEquals(10, resolver.batchSizeFor(FilterShape.AUTHOR));
+    }
+
+    @Test
+    void samplingIsCountedPerShape() {
+        AggregationPolicyProperties properties = new AggregationPolicyProperties();
+        AggregationPolicyResolver resolver = new AggregationPolicyResolver(properties, null);
+
+        for (int i = 0; i < 5; i++) {
+            resolver.observe(FilterShape.NAME, new Document("year", 1990));
+        }
+        resolver.observe(FilterShape.AUTHOR, new Document("name", "x".repeat(1_000_000)));
+
+        assertEquals((int) properties.getDefaults().getMinBatchSize(), resolver.batchSizeFor(FilterShape.AUTHOR));
+        assertEquals((int) properties.getDefaults().getMaxBatchSize(), resolver.batchSizeFor(FilterShape.NAME));
+    }
+
+    @Test
+    void batchSizeRangeValidation() {
+        AggregationPolicyProperties properties = new AggregationPolicyProperties();
+        assertTrue(properties.isBatchSizeRangeValid());
+
+        AggregationPolicy author = new AggregationPolicy();
+        author.setMinBatchSize(properties.getDefaults().getMaxBatchSize() + 1);
+        properties.getShapes().put(FilterShape.AUTHOR, author);
+        assertFalse(properties.isBatchSizeRangeValid());
+    }
+
+}
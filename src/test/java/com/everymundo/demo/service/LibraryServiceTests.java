@@ -0,0 +1,74 @@
+package com.everymundo.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.everymundo.demo.model.filter.AuthorFilter;
+import com.everymundo.demo.model.filter.BookFilter;
+import com.everymundo.demo.model.filter.LibraryFilter;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+
+class LibraryServiceTests {
+
+    private final LibraryService libraryService = new LibraryService(null, null);
+
+
+    @Test
+    void pageStagesWithoutAuthorFilterLookupOnlyInBooksFacet() {
+        LibraryFilter filter = new LibraryFilter();
+        filter.setBook(new BookFilter());
+        filter.getBook().setYear(1990);
+
+        List<Document> pipeline = render(filter, 2, 10);
+
+        assertEquals(List.of("$match", "$sort", "$facet", "$project"), operators(pipeline));
+        assertEquals(new Document("_id", 1), pipeline.get(1).get("$sort"));
+
+        Document facet = pipeline.get(2).get("$facet", Document.class);
+        assertEquals(List.of("$skip", "$limit", "$lookup", "$unwind"), operators(facet.getList("books", Document.class)));
+        assertEquals(20L, ((Number) facet.getList("books", Document.class).get(0).get("$skip")).longValue());
+        assertEquals(List.of(new Document("$count", "total")), facet.get("total"));
+    }
+
+    @Test
+    void pageStagesWithAuthorFilterLookupBeforeFacet() {
+        LibraryFilter filter = new LibraryFilter();
+        filter.setAuthor(new AuthorFilter());
+        filter.getAuthor().setLastName("Tolkien");
+
+        List<Document> pipeline = render(filter, 0, 10);
+
+        assertEquals(List.of("$sort", "$lookup", "$unwind", "$facet", "$project"), operators(pipeline));
+
+        Document facet = pipeline.get(3).get("$facet", Document.class);
+        assertEquals(List.of("$skip", "$limit"), operators(facet.getList("books", Document.class)));
+        assertEquals(List.of("$count"), operators(facet.getList("total", Document.class)));
+    }
+
+    @Test
+    void pageStagesPreserveMissingAuthorOnlyWithoutAuthorFilter() {
+        Document unfilteredFacet = render(new LibraryFilter(), 0, 10).get(1).get("$facet", Document.class);
+        Document unwind = unfilteredFacet.getList("books", Document.class).get(3).get("$unwind", Document.class);
+        assertTrue(unwind.getBoolean("preserveNullAndEmptyArrays"));
+
+        LibraryFilter filter = new LibraryFilter();
+        filter.setAuthor(new AuthorFilter());
+        filter.getAuthor().setFirstName("J");
+        assertEquals("$author", render(filter, 0, 10).get(2).get("$unwind"));
+    }
+
+    private List<Document> render(LibraryFilter filter, int page, int size) {
+        return Aggregation.newAggregation(libraryService.pageStages(filter, page, size)).toPipeline(Aggregation.DEFAULT_CONTEXT);
+    }
+
+    private static List<String> operators(List<Document> pipeline) {
+        return pipeline.stream().map(stage -> stage.keySet().iterator().next()).collect(Collectors.toList());
+    }
+
+}